@@ -1,8 +1,16 @@
 package pkg.client;
 
+import java.io.File;
+import java.io.IOException;
+
 import pkg.exception.StockMarketExpection;
 import pkg.market.Market;
 import pkg.market.api.IPO;
+import pkg.market.export.ColumnBlock;
+import pkg.market.export.ColumnType;
+import pkg.market.export.ColumnarReader;
+import pkg.market.export.MarketExporter;
+import pkg.market.replay.SimulatedClock;
 import pkg.order.OrderType;
 import pkg.trader.Trader;
 
@@ -133,5 +141,78 @@ public class Client {
 		trader16.printTrader();
 
 		nasdaq.printHistoryFor("SBUX");
+
+		// A simulated clock gives the history predictable timestamps
+		Market nyse = new Market("NYSE");
+		SimulatedClock clock = new SimulatedClock(0);
+		nyse.setClock(clock);
+		// Fills and ticks are also written to columnar files
+		File exportDir = new File(System.getProperty("java.io.tmpdir"),
+				"nyse-export");
+		exportDir.mkdirs();
+		MarketExporter exporter = null;
+		try {
+			exporter = new MarketExporter(exportDir);
+			nyse.setExporter(exporter);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		IPO.enterNewStock(nyse, "IBM", "IBM Corp.", 150.0);
+		Trader trader17 = new Trader("Ada", 100000.00);
+		try {
+			for (int second = 1; second <= 20; second++) {
+				clock.advanceTo(second * 1000);
+				nyse.updateStockPrice("IBM", 150.0 + second % 5);
+			}
+			trader17.buyFromBank(nyse, "IBM", 100);
+			// Both ends of the range are included
+			nyse.printHistoryFor("IBM", 5000, 10000);
+			// Four 5 second spans, keeping the low and high of each
+			System.out.println(nyse.getMarketHistory()
+					.getDownsampledTicksBetween("IBM", 0, 20000, 8));
+		} catch (StockMarketExpection e) {
+			e.printStackTrace();
+		}
+
+		if (exporter != null) {
+			try {
+				exporter.close();
+				printColumns(new File(exportDir, "fills.col"), "trader", "side",
+						"size", "price");
+				printColumns(new File(exportDir, "ticks.col"), "timestamp",
+						"price");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// Reads back only the named columns, one row per line
+	static void printColumns(File file, String... columns) throws IOException {
+		ColumnarReader reader = new ColumnarReader(file);
+		try {
+			System.out.println("Columns of " + file.getName());
+			ColumnBlock block;
+			while ((block = reader.readBlock(columns)) != null) {
+				for (int row = 0; row < block.getRowCount(); row++) {
+					for (int c = 0; c < columns.length; c++) {
+						String column = columns[c];
+						ColumnType type = reader.getColumnType(column);
+						if (c != 0)
+							System.out.print(" ");
+						if (type == ColumnType.STRING) {
+							System.out.print(block.getStrings(column)[row]);
+						} else if (type == ColumnType.LONG) {
+							System.out.print(block.getLongs(column)[row]);
+						} else {
+							System.out.print(block.getDoubles(column)[row]);
+						}
+					}
+					System.out.println();
+				}
+			}
+		} finally {
+			reader.close();
+		}
 	}
 }
@@ -1,24 +1,53 @@
 package pkg.market;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import pkg.exception.StockMarketExpection;
+import pkg.market.api.IClock;
+import pkg.market.export.MarketExporter;
 import pkg.order.Order;
 import pkg.order.OrderBook;
 import pkg.stock.Stock;
+import pkg.trader.PortfolioValuator;
 
 public class Market {
 	String marketName;
-	HashMap<String, Stock> stockList;
+	// One partition per symbol; see SymbolPartition for the locking rules
+	ConcurrentHashMap<String, SymbolPartition> partitions;
 	MarketHistory marketHistory;
 	OrderBook orderBook;
+	PortfolioValuator portfolioValuator;
+	IClock clock;
+	volatile MarketExporter exporter;
+	// When set, trading errors are not printed (used by replays)
+	boolean quiet;
 
 	public Market(String name) {
 		this.marketName = name;
-		stockList = new HashMap<String, Stock>();
+		clock = new SystemClock();
+		partitions = new ConcurrentHashMap<String, SymbolPartition>();
 		marketHistory = new MarketHistory(this);
 		orderBook = new OrderBook(this);
+		portfolioValuator = new PortfolioValuator(this);
+	}
+
+	// Only for paths that list a stock or rest an order on the book
+	public SymbolPartition partitionFor(String symbol) {
+		SymbolPartition partition = partitions.get(symbol);
+		if (partition == null) {
+			SymbolPartition newPartition = new SymbolPartition(symbol);
+			partition = partitions.putIfAbsent(symbol, newPartition);
+			if (partition == null) {
+				partition = newPartition;
+			}
+		}
+		return partition;
+	}
+
+	// Unlike partitionFor, never creates one: null if the symbol is unknown
+	public SymbolPartition getPartition(String symbol) {
+		return partitions.get(symbol);
 	}
 
 	public void addStock(Stock stock) throws StockMarketExpection {
@@ -26,54 +55,116 @@ public class Market {
 			throw new StockMarketExpection("Stock has a negative price ("
 					+ stock.getSymbol() + ", " + stock.getPrice() + ")");
 		}
-		if (stockList.containsKey(stock.getSymbol())) {
-			throw new StockMarketExpection(
-					"Tried to enter a stock that is already present ("
-					 + stock.getSymbol() + ")");
+		SymbolPartition partition = partitionFor(stock.getSymbol());
+		partition.lock();
+		try {
+			if (partition.getStock() != null) {
+				throw new StockMarketExpection(
+						"Tried to enter a stock that is already present ("
+						 + stock.getSymbol() + ")");
+			}
+			PriceTick tick = partition.nextTick(clock.currentTimeMillis(),
+					stock.getPrice());
+			marketHistory.recordTick(stock.getSymbol(), tick);
+			// A relisted symbol may still have holders from before
+			portfolioValuator.reprice(stock.getSymbol(), tick.getPrice());
+			// Readers only see the stock once everything else is in place
+			partition.publish(tick);
+			partition.setStock(stock);
+		} finally {
+			partition.unlock();
 		}
-		stockList.put(stock.getSymbol(), stock);
-		marketHistory.startHistoryWithPrice(stock.getSymbol(), stock.getPrice());
 	}
 
 	public Stock getStockForSymbol(String symbol) {
-		if (stockList.containsKey(symbol)) {
-			return stockList.get(symbol);
+		SymbolPartition partition = partitions.get(symbol);
+		if (partition != null) {
+			return partition.getStock();
 		}
 		return null;
 	}
 
+	/**
+	 * Latest price and its time for symbol, or null if it is not listed.
+	 * Never blocks, and the price and time always belong together.
+	 */
+	public PriceTick getCurrentPrice(String symbol) {
+		SymbolPartition partition = partitions.get(symbol);
+		if (partition != null) {
+			return partition.getLastTick();
+		}
+		return null;
+	}
+
+	public ArrayList<String> getSymbols() {
+		ArrayList<String> symbols = new ArrayList<String>();
+		for (SymbolPartition partition : partitions.values()) {
+			if (partition.getStock() != null) {
+				symbols.add(partition.getSymbol());
+			}
+		}
+		return symbols;
+	}
+
 	public Stock removeStockFromStockList(String symbol)
 			throws StockMarketExpection {
-		if (getStockForSymbol(symbol) == null) {
+		SymbolPartition partition = partitions.get(symbol);
+		if (partition == null) {
 			throw new StockMarketExpection("Stock not present (" + symbol + ")");
 		}
-		return stockList.remove(symbol);
+		partition.lock();
+		try {
+			Stock stock = partition.getStock();
+			if (stock == null) {
+				throw new StockMarketExpection("Stock not present (" + symbol + ")");
+			}
+			partition.clear();
+			return stock;
+		} finally {
+			partition.unlock();
+		}
 	}
 
 	public void updateStockPrice(String symbol, double newPrice)
 			throws StockMarketExpection {
-
-		if (getStockForSymbol(symbol) == null) {
+		SymbolPartition partition = partitions.get(symbol);
+		if (partition == null) {
 			throw new StockMarketExpection("Stock not present (" + symbol + ")");
 		}
-		if (newPrice < 0.0) {
-			throw new StockMarketExpection(
-					"Stock price cannot be set to a negative value (" + symbol
-					 + ", " + getStockForSymbol(symbol).getPrice()
-					 + ") -> " + newPrice + " X Not Allowed ");
-		}
+		partition.lock();
+		try {
+			Stock stockToBeUpdated = partition.getStock();
+			if (stockToBeUpdated == null) {
+				throw new StockMarketExpection("Stock not present (" + symbol + ")");
+			}
+			if (newPrice < 0.0) {
+				throw new StockMarketExpection(
+						"Stock price cannot be set to a negative value (" + symbol
+						 + ", " + stockToBeUpdated.getPrice()
+						 + ") -> " + newPrice + " X Not Allowed ");
+			}
 
-        	// get stock from list and update price
-		Stock stockToBeUpdated = removeStockFromStockList(symbol);
-		stockToBeUpdated.setPrice(newPrice);
-		addStock(stockToBeUpdated);
+			// One timestamp for both the published price and its history entry
+			PriceTick tick = partition.nextTick(clock.currentTimeMillis(),
+					newPrice);
+			marketHistory.recordTick(symbol, tick);
+			portfolioValuator.reprice(symbol, tick.getPrice());
+			// Update in place so readers never see the stock missing
+			stockToBeUpdated.setPrice(newPrice);
+			partition.publish(tick);
+		} finally {
+			partition.unlock();
+		}
 	}
 
 	public void printStocks() {
 		System.out.println(marketName);
-		for (String stockSymbol : stockList.keySet()) {
-			System.out.print("(" + stockSymbol + ", "
-					+ stockList.get(stockSymbol).getPrice() + ") ");
+		for (SymbolPartition partition : partitions.values()) {
+			PriceTick lastTick = partition.getLastTick();
+			if (lastTick != null) {
+				System.out.print("(" + partition.getSymbol() + ", "
+						+ lastTick.getPrice() + ") ");
+			}
 		}
 		System.out.println();
 	}
@@ -93,10 +184,41 @@ public class Market {
 		}
 	}
 
+	public void printHistoryFor(String symbol, long from, long to) {
+		if (getStockForSymbol(symbol) != null) {
+			ArrayList<PriceTick> ticks = getMarketHistory()
+					.getTicksBetween(symbol, from, to);
+			System.out.println("Stock Name: " + symbol + " in Market: "
+					+ marketName + " from " + from + " to " + to);
+			for (int i = ticks.size() - 1; i >= 0; i--) {
+				System.out.print(ticks.get(i));
+				if (i != 0)
+					System.out.print(" - ");
+			}
+			System.out.println();
+		}
+	}
+
 	public void addOrder(Order order) {
 		orderBook.addToOrderBook(order);
 	}
 
+	public void cancelOrder(Order order) {
+		orderBook.removeFromOrderBook(order);
+	}
+
+	public void recordFill(Order order, double fillPrice) {
+		portfolioValuator.recordFill(order, fillPrice);
+		MarketExporter exporter = this.exporter;
+		if (exporter != null) {
+			exporter.recordFill(order, fillPrice, clock.currentTimeMillis());
+		}
+	}
+
+	public PortfolioValuator getPortfolioValuator() {
+		return portfolioValuator;
+	}
+
 	public MarketHistory getMarketHistory() {
 		return marketHistory;
 	}
@@ -105,6 +227,30 @@ public class Market {
 		this.marketHistory = marketHistory;
 	}
 
+	public IClock getClock() {
+		return clock;
+	}
+
+	public void setClock(IClock clock) {
+		this.clock = clock;
+	}
+
+	public MarketExporter getExporter() {
+		return exporter;
+	}
+
+	public void setExporter(MarketExporter exporter) {
+		this.exporter = exporter;
+	}
+
+	public boolean isQuiet() {
+		return quiet;
+	}
+
+	public void setQuiet(boolean quiet) {
+		this.quiet = quiet;
+	}
+
 	public void triggerTrade() {
 		orderBook.trade();
 	}
@@ -1,64 +1,151 @@
 package pkg.market;
 
 import pkg.exception.StockMarketExpection;
+import pkg.market.export.MarketExporter;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import pkg.market.api.IObserver;
-import pkg.market.api.ISubject;
-import pkg.stock.Stock;
-
-public class MarketHistory implements IObserver {
-	private ISubject subject;
+public class MarketHistory {
 	Market market;
-	Map<String, List<Double>> history;
+	// Written only under the symbol's partition lock; read without locking
+	Map<String, PriceSeries> history;
 
 	public MarketHistory(Market newMarket) {
 		super();
 		this.market = newMarket;
-		history = new HashMap<String, List<Double>>();
-	}
-
-	@Override
-	public void setSubject(ISubject priceSetter) {
-		this.subject = priceSetter;
+		history = new ConcurrentHashMap<String, PriceSeries>();
 	}
 
 	public void startHistoryWithPrice(String symbol, Double newPrice)
 			throws StockMarketExpection {
-		if (!history.containsKey(symbol)) {
-			List<Double> priceList = new ArrayList<Double>();
-			priceList.add(newPrice);
-			history.put(symbol, priceList);
+		SymbolPartition partition = market.getPartition(symbol);
+		if (partition == null) {
+			throw new StockMarketExpection("Stock not present (" + symbol + ")");
+		}
+		partition.lock();
+		try {
+			if (!history.containsKey(symbol)) {
+				recordTick(symbol, new PriceTick(
+						market.getClock().currentTimeMillis(), newPrice));
+			}
+		} finally {
+			partition.unlock();
 		}
 	}
 
-	@Override
-	public void update() {
-		Stock updatedStock = (Stock) subject.getUpdate();
-		if (market.getStockForSymbol(updatedStock.getSymbol()) == null) {
-			return;
-		}
-		if (history.containsKey(updatedStock.getSymbol())) {
-			List<Double> priceList = history.get(updatedStock.getSymbol());
-			priceList.add(updatedStock.getPrice());
-			history.put(updatedStock.getSymbol(), priceList);
-		} else {
+	// The caller must hold the symbol's partition lock
+	void recordTick(String symbol, PriceTick tick) {
+		PriceSeries series = history.get(symbol);
+		if (series == null) {
 			// New entry to history
-			List<Double> priceList = new ArrayList<Double>();
-			priceList.add(updatedStock.getPrice());
-			history.put(updatedStock.getSymbol(), priceList);
+			series = new PriceSeries();
+			history.put(symbol, series);
+		}
+		series.append(tick.getTimestamp(), tick.getPrice());
+		MarketExporter exporter = market.getExporter();
+		if (exporter != null) {
+			exporter.recordTick(symbol, tick.getTimestamp(), tick.getPrice());
 		}
 	}
 
 	public ArrayList<Double> getPriceFor(String symbol) {
 		if (history.containsKey(symbol)) {
-			return (ArrayList<Double>) history.get(symbol);
+			return history.get(symbol).getPrices();
 		} else {
 			return new ArrayList<Double>();
 		}
 	}
+
+	/**
+	 * Returns every tick for symbol with from <= timestamp <= to, oldest
+	 * first. Runs in O(log n + k) for k matching ticks.
+	 */
+	public ArrayList<PriceTick> getTicksBetween(String symbol, long from, long to) {
+		ArrayList<PriceTick> ticks = new ArrayList<PriceTick>();
+		PriceSeries series = history.get(symbol);
+		if (series == null) {
+			return ticks;
+		}
+		// Size first, then the arrays; see PriceSeries
+		int count = series.size;
+		long[] times = series.times;
+		double[] prices = series.prices;
+
+		int end = PriceSeries.firstIndexAfter(times, count, to);
+		for (int i = PriceSeries.firstIndexAtOrAfter(times, count, from); i < end; i++) {
+			ticks.add(new PriceTick(times[i], prices[i]));
+		}
+		return ticks;
+	}
+
+	/**
+	 * Same range as getTicksBetween, reduced to at most maxPoints ticks for
+	 * charting. [from, to] is split into maxPoints / 2 spans of equal time
+	 * and the lowest and highest tick of each span are kept, so spikes
+	 * survive. Spans with no ticks add nothing.
+	 */
+	public ArrayList<PriceTick> getDownsampledTicksBetween(String symbol,
+			long from, long to, int maxPoints) throws StockMarketExpection {
+		if (maxPoints < 2) {
+			throw new StockMarketExpection(
+					"Cannot downsample history to fewer than 2 points ("
+					+ symbol + ", " + maxPoints + ")");
+		}
+		ArrayList<PriceTick> ticks = new ArrayList<PriceTick>();
+		PriceSeries series = history.get(symbol);
+		if (series == null) {
+			return ticks;
+		}
+		// Size first, then the arrays; see PriceSeries
+		int count = series.size;
+		long[] times = series.times;
+		double[] prices = series.prices;
+
+		int start = PriceSeries.firstIndexAtOrAfter(times, count, from);
+		int end = PriceSeries.firstIndexAfter(times, count, to);
+		if (end - start <= maxPoints) {
+			for (int i = start; i < end; i++) {
+				ticks.add(new PriceTick(times[i], prices[i]));
+			}
+			return ticks;
+		}
+
+		// Worked in doubles so a wide range cannot overflow
+		int buckets = maxPoints / 2;
+		double span = ((double) to - (double) from) / buckets;
+		int bucketStart = start;
+		for (int b = 1; b <= buckets; b++) {
+			// Each span's first tick is found by binary search
+			int bucketEnd = end;
+			if (b < buckets) {
+				long boundary = (long) Math.ceil(from + span * b);
+				bucketEnd = Math.min(end, Math.max(bucketStart,
+						PriceSeries.firstIndexAtOrAfter(times, count, boundary)));
+			}
+			if (bucketEnd == bucketStart) {
+				continue;
+			}
+			int minIndex = bucketStart, maxIndex = bucketStart;
+			for (int i = bucketStart + 1; i < bucketEnd; i++) {
+				if (prices[i] < prices[minIndex]) {
+					minIndex = i;
+				}
+				if (prices[i] > prices[maxIndex]) {
+					maxIndex = i;
+				}
+			}
+
+			// Keep the two extremes in time order
+			int first = Math.min(minIndex, maxIndex);
+			int second = Math.max(minIndex, maxIndex);
+			ticks.add(new PriceTick(times[first], prices[first]));
+			if (second != first) {
+				ticks.add(new PriceTick(times[second], prices[second]));
+			}
+			bucketStart = bucketEnd;
+		}
+		return ticks;
+	}
 }
@@ -0,0 +1,89 @@
+package pkg.market;
+
+import java.util.ArrayList;
+
+/**
+ * One symbol's price history as growable primitive arrays, oldest first.
+ * Timestamps never decrease, so ranges are found by binary search.
+ *
+ * Append-only with a single writer (the holder of the symbol's partition
+ * lock). The writer fills a slot, then publishes it by bumping the volatile
+ * size, and never touches slots below size again; a grown array is
+ * published before the size that needs it. Readers therefore read size
+ * first, then the arrays, and see a consistent prefix without locking.
+ */
+public class PriceSeries {
+	static final int INITIAL_CAPACITY = 16;
+
+	volatile long[] times;
+	volatile double[] prices;
+	volatile int size;
+
+	public PriceSeries() {
+		times = new long[INITIAL_CAPACITY];
+		prices = new double[INITIAL_CAPACITY];
+	}
+
+	public void append(long timestamp, double price) {
+		int count = size;
+		long[] currentTimes = times;
+		double[] currentPrices = prices;
+		if (count == currentTimes.length) {
+			long[] newTimes = new long[count * 2];
+			double[] newPrices = new double[count * 2];
+			System.arraycopy(currentTimes, 0, newTimes, 0, count);
+			System.arraycopy(currentPrices, 0, newPrices, 0, count);
+			currentTimes = newTimes;
+			currentPrices = newPrices;
+		}
+		// Never step backwards, even if the clock does
+		if (count > 0 && timestamp < currentTimes[count - 1]) {
+			timestamp = currentTimes[count - 1];
+		}
+		currentTimes[count] = timestamp;
+		currentPrices[count] = price;
+		times = currentTimes;
+		prices = currentPrices;
+		size = count + 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public ArrayList<Double> getPrices() {
+		int count = size;
+		double[] snapshot = prices;
+		ArrayList<Double> priceList = new ArrayList<Double>(count);
+		for (int i = 0; i < count; i++) {
+			priceList.add(snapshot[i]);
+		}
+		return priceList;
+	}
+
+	static int firstIndexAtOrAfter(long[] times, int count, long time) {
+		int low = 0, high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	static int firstIndexAfter(long[] times, int count, long time) {
+		int low = 0, high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,24 @@
+package pkg.market;
+
+public class PriceTick {
+	private final long timestamp;
+	private final double price;
+
+	public PriceTick(long timestamp, double price) {
+		this.timestamp = timestamp;
+		this.price = price;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	@Override
+	public String toString() {
+		return "(" + timestamp + ", " + price + ")";
+	}
+}
@@ -0,0 +1,71 @@
+package pkg.market;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import pkg.stock.Stock;
+
+/**
+ * All mutable market state for one symbol is guarded by its partition's
+ * lock. The latest price is also published as an immutable PriceTick, so
+ * readers get a consistent price without taking the lock.
+ *
+ * A partition is never removed once created; removing a stock only clears
+ * it. That way every thread always locks the same object for a symbol.
+ */
+public class SymbolPartition {
+	final String symbol;
+	final ReentrantLock lock;
+	volatile Stock stock;
+	volatile PriceTick lastTick;
+	// Survives clear(), so a relisted stock's history stays in time order
+	long lastTimestamp = Long.MIN_VALUE;
+
+	public SymbolPartition(String symbol) {
+		this.symbol = symbol;
+		this.lock = new ReentrantLock();
+	}
+
+	public void lock() {
+		lock.lock();
+	}
+
+	public void unlock() {
+		lock.unlock();
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public Stock getStock() {
+		return stock;
+	}
+
+	void setStock(Stock stock) {
+		this.stock = stock;
+	}
+
+	// Null while no stock is listed for the symbol
+	public PriceTick getLastTick() {
+		return lastTick;
+	}
+
+	// Never steps backwards, even if the clock does. The caller must hold
+	// the lock, record the tick in the history as-is, then publish it.
+	PriceTick nextTick(long timestamp, double price) {
+		if (timestamp < lastTimestamp) {
+			timestamp = lastTimestamp;
+		}
+		return new PriceTick(timestamp, price);
+	}
+
+	void publish(PriceTick tick) {
+		lastTimestamp = tick.getTimestamp();
+		lastTick = tick;
+	}
+
+	void clear() {
+		stock = null;
+		lastTick = null;
+	}
+}
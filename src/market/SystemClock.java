@@ -0,0 +1,10 @@
+package pkg.market;
+
+import pkg.market.api.IClock;
+
+public class SystemClock implements IClock {
+	@Override
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,5 @@
+package pkg.market.api;
+
+public interface IClock {
+	public long currentTimeMillis();
+}
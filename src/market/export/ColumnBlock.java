@@ -0,0 +1,35 @@
+package pkg.market.export;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ColumnBlock {
+	int rowCount;
+	// Column name -> String[], long[] or double[] holding rowCount values
+	Map<String, Object> columns;
+
+	public ColumnBlock(int rowCount) {
+		this.rowCount = rowCount;
+		this.columns = new HashMap<String, Object>();
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public boolean hasColumn(String name) {
+		return columns.containsKey(name);
+	}
+
+	public String[] getStrings(String name) {
+		return (String[]) columns.get(name);
+	}
+
+	public long[] getLongs(String name) {
+		return (long[]) columns.get(name);
+	}
+
+	public double[] getDoubles(String name) {
+		return (double[]) columns.get(name);
+	}
+}
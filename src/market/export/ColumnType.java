@@ -0,0 +1,5 @@
+package pkg.market.export;
+
+public enum ColumnType {
+	STRING, LONG, DOUBLE
+}
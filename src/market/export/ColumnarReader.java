@@ -0,0 +1,133 @@
+package pkg.market.export;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads files written by ColumnarWriter one block at a time. Only the
+ * requested columns are inflated and decoded; the rest are skipped.
+ */
+public class ColumnarReader {
+	String[] names;
+	ColumnType[] types;
+	DataInputStream in;
+	boolean finished;
+
+	public ColumnarReader(File file) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		if (in.readInt() != ColumnarWriter.MAGIC) {
+			in.close();
+			throw new IOException("Not a columnar file (" + file + ")");
+		}
+		int version = in.readInt();
+		if (version != ColumnarWriter.VERSION) {
+			in.close();
+			throw new IOException("Unsupported columnar file version ("
+					+ file + ", " + version + ")");
+		}
+
+		int columnCount = in.readInt();
+		names = new String[columnCount];
+		types = new ColumnType[columnCount];
+		for (int c = 0; c < columnCount; c++) {
+			names[c] = in.readUTF();
+			types[c] = ColumnType.values()[in.readByte()];
+		}
+	}
+
+	public String[] getColumnNames() {
+		return names.clone();
+	}
+
+	public ColumnType getColumnType(String name) {
+		int index = Arrays.asList(names).indexOf(name);
+		return index < 0 ? null : types[index];
+	}
+
+	// Returns null once every block has been read
+	public ColumnBlock readBlock(String... columns) throws IOException {
+		List<String> wanted = Arrays.asList(columns);
+		for (String column : wanted) {
+			if (getColumnType(column) == null) {
+				throw new IOException("No such column (" + column + ")");
+			}
+		}
+		if (finished) {
+			return null;
+		}
+
+		int rowCount = in.readInt();
+		if (rowCount == 0) {
+			finished = true;
+			return null;
+		}
+
+		ColumnBlock block = new ColumnBlock(rowCount);
+		for (int c = 0; c < names.length; c++) {
+			int length = in.readInt();
+			if (!wanted.contains(names[c])) {
+				skipFully(length);
+				continue;
+			}
+			byte[] data = new byte[length];
+			in.readFully(data);
+			block.columns.put(names[c], decode(types[c], data, rowCount));
+		}
+		return block;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	Object decode(ColumnType type, byte[] data, int rowCount)
+			throws IOException {
+		DataInputStream column = new DataInputStream(new InflaterInputStream(
+				new ByteArrayInputStream(data)));
+		try {
+			switch (type) {
+			case STRING:
+				String[] strings = new String[rowCount];
+				for (int i = 0; i < rowCount; i++) {
+					strings[i] = column.readUTF();
+				}
+				return strings;
+			case LONG:
+				long[] longs = new long[rowCount];
+				long previous = 0;
+				for (int i = 0; i < rowCount; i++) {
+					previous += column.readLong();
+					longs[i] = previous;
+				}
+				return longs;
+			default:
+				double[] doubles = new double[rowCount];
+				for (int i = 0; i < rowCount; i++) {
+					doubles[i] = column.readDouble();
+				}
+				return doubles;
+			}
+		} finally {
+			column.close();
+		}
+	}
+
+	void skipFully(int length) throws IOException {
+		while (length > 0) {
+			int skipped = in.skipBytes(length);
+			if (skipped <= 0) {
+				throw new EOFException("Truncated columnar file");
+			}
+			length -= skipped;
+		}
+	}
+}
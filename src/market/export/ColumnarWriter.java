@@ -0,0 +1,251 @@
+package pkg.market.export;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes rows to a compressed columnar file on a background thread.
+ *
+ * File layout: MAGIC, VERSION, column count, then each column's name and
+ * type. Rows follow in blocks of up to blockSize: the row count, then for
+ * each column the length of its deflated bytes and the bytes themselves, so
+ * a reader can skip columns it does not need. LONG columns are stored as
+ * deltas from the previous row. A row count of 0 ends the file.
+ *
+ * Memory is bounded by the queue capacity plus one block; write() blocks
+ * while the queue is full and offer() does not. Rows are checked against
+ * the column types on the caller's thread. Any failure after that,
+ * including a row dropped by an interrupt, is reported by close(). Once
+ * closed, or once the writer thread has stopped, writes throw.
+ */
+public class ColumnarWriter implements Runnable {
+	static final int MAGIC = 0x434C4D4E;
+	static final int VERSION = 1;
+	static final Object[] END = new Object[0];
+	// How often a blocked write checks that the writer thread is still alive
+	static final long POLL_MILLIS = 100;
+
+	String[] names;
+	ColumnType[] types;
+	int blockSize;
+	DataOutputStream out;
+	BlockingQueue<Object[]> queue;
+	Thread thread;
+	// Writers queue under the read lock and close() takes the write lock,
+	// so no row can be queued behind END
+	ReadWriteLock closeLock;
+	volatile boolean closed;
+	volatile boolean running;
+	volatile IOException failure;
+
+	public ColumnarWriter(File file, String[] names, ColumnType[] types,
+			int blockSize, int queueCapacity) throws IOException {
+		if (names.length != types.length) {
+			throw new IllegalArgumentException("Got " + names.length
+					+ " column names for " + types.length + " column types");
+		}
+		this.names = names;
+		this.types = types;
+		this.blockSize = blockSize;
+		this.queue = new ArrayBlockingQueue<Object[]>(queueCapacity);
+		this.closeLock = new ReentrantReadWriteLock();
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(names.length);
+		for (int c = 0; c < names.length; c++) {
+			out.writeUTF(names[c]);
+			out.writeByte(types[c].ordinal());
+		}
+
+		thread = new Thread(this, "columnar-writer-" + file.getName());
+		thread.setDaemon(true);
+		running = true;
+		thread.start();
+	}
+
+	// Values must match the column types: a non-null String, or any Number
+	public void write(Object... row) {
+		checkRow(row);
+		closeLock.readLock().lock();
+		try {
+			checkOpen();
+			while (!queue.offer(row, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				checkOpen();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail(new InterruptedIOException(
+					"Interrupted while queueing a row; row dropped"));
+		} finally {
+			closeLock.readLock().unlock();
+		}
+	}
+
+	// Like write(), but returns false at once instead of waiting for room
+	public boolean offer(Object... row) {
+		checkRow(row);
+		closeLock.readLock().lock();
+		try {
+			checkOpen();
+			return queue.offer(row);
+		} finally {
+			closeLock.readLock().unlock();
+		}
+	}
+
+	void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Writer already closed");
+		}
+		if (!running) {
+			throw new IllegalStateException("Writer thread has stopped");
+		}
+	}
+
+	void checkRow(Object[] row) {
+		if (row.length != names.length) {
+			throw new IllegalArgumentException("Got " + row.length
+					+ " values for " + names.length + " columns");
+		}
+		for (int c = 0; c < names.length; c++) {
+			boolean matches;
+			if (types[c] == ColumnType.STRING) {
+				matches = row[c] instanceof String;
+			} else {
+				matches = row[c] instanceof Number;
+			}
+			if (!matches) {
+				throw new IllegalArgumentException("Bad value for column "
+						+ names[c] + " (" + types[c] + "): " + row[c]);
+			}
+		}
+	}
+
+	// Keeps the first failure; both the caller and the writer thread report here
+	synchronized void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	public void close() throws IOException {
+		closeLock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+		try {
+			while (running
+					&& !queue.offer(END, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				// The writer thread is still draining
+			}
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted closing writer");
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	@Override
+	public void run() {
+		List<Object[]> block = new ArrayList<Object[]>(blockSize);
+		try {
+			while (true) {
+				Object[] row = queue.take();
+				if (row == END) {
+					break;
+				}
+				// Keep draining after a failure so write() never blocks forever
+				if (failure != null) {
+					continue;
+				}
+				block.add(row);
+				if (block.size() == blockSize) {
+					flushBlock(block);
+				}
+			}
+		} catch (InterruptedException e) {
+			fail(new InterruptedIOException("Writer thread interrupted"));
+		}
+		try {
+			if (!block.isEmpty()) {
+				flushBlock(block);
+			}
+			try {
+				if (failure == null) {
+					out.writeInt(0);
+				}
+				out.close();
+			} catch (IOException e) {
+				fail(e);
+			}
+		} finally {
+			running = false;
+		}
+	}
+
+	void flushBlock(List<Object[]> block) {
+		if (failure == null) {
+			try {
+				writeBlock(block);
+			} catch (IOException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				// Keep the thread alive so the queue still drains
+				fail(new IOException("Could not encode block", e));
+			}
+		}
+		block.clear();
+	}
+
+	void writeBlock(List<Object[]> block) throws IOException {
+		out.writeInt(block.size());
+		for (int c = 0; c < names.length; c++) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream column = new DataOutputStream(
+					new DeflaterOutputStream(bytes));
+			long previous = 0;
+			for (Object[] row : block) {
+				switch (types[c]) {
+				case STRING:
+					column.writeUTF((String) row[c]);
+					break;
+				case LONG:
+					long value = ((Number) row[c]).longValue();
+					column.writeLong(value - previous);
+					previous = value;
+					break;
+				case DOUBLE:
+					column.writeDouble(((Number) row[c]).doubleValue());
+					break;
+				}
+			}
+			column.close();
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package pkg.market.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pkg.order.BuyOrder;
+import pkg.order.Order;
+
+/**
+ * Streams a market's fills and history ticks to two columnar files,
+ * fills.col and ticks.col, in the given directory.
+ *
+ * Trades clear in a call auction at one price, so a fill is not paired
+ * with a single counterparty. Each executed order is one fill row, with
+ * its side and trader.
+ *
+ * The market calls in while holding a symbol's lock, so recording never
+ * blocks and never throws: a row that finds the queue full is dropped, and
+ * drops and failures are counted and reported by close(). After close()
+ * recording does nothing.
+ */
+public class MarketExporter {
+	public static final String[] FILL_COLUMNS = { "symbol", "price", "size",
+			"side", "trader", "timestamp" };
+	public static final ColumnType[] FILL_TYPES = { ColumnType.STRING,
+			ColumnType.DOUBLE, ColumnType.LONG, ColumnType.STRING,
+			ColumnType.STRING, ColumnType.LONG };
+	public static final String[] TICK_COLUMNS = { "symbol", "timestamp",
+			"price" };
+	public static final ColumnType[] TICK_TYPES = { ColumnType.STRING,
+			ColumnType.LONG, ColumnType.DOUBLE };
+
+	static final int BLOCK_SIZE = 8192;
+	static final int QUEUE_CAPACITY = 65536;
+
+	ColumnarWriter fillWriter;
+	ColumnarWriter tickWriter;
+	volatile boolean closed;
+	AtomicLong droppedFills;
+	AtomicLong droppedTicks;
+	volatile RuntimeException failure;
+
+	public MarketExporter(File directory) throws IOException {
+		droppedFills = new AtomicLong();
+		droppedTicks = new AtomicLong();
+		fillWriter = new ColumnarWriter(new File(directory, "fills.col"),
+				FILL_COLUMNS, FILL_TYPES, BLOCK_SIZE, QUEUE_CAPACITY);
+		tickWriter = new ColumnarWriter(new File(directory, "ticks.col"),
+				TICK_COLUMNS, TICK_TYPES, BLOCK_SIZE, QUEUE_CAPACITY);
+	}
+
+	public void recordFill(Order order, double fillPrice, long timestamp) {
+		if (closed) {
+			return;
+		}
+		try {
+			String side = order instanceof BuyOrder ? "BUY" : "SELL";
+			String trader = order.getTrader().getName();
+			if (!fillWriter.offer(order.getStockSymbol(), fillPrice,
+					order.getSize(), side, trader == null ? "" : trader,
+					timestamp)) {
+				droppedFills.incrementAndGet();
+			}
+		} catch (RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	public void recordTick(String symbol, long timestamp, double price) {
+		if (closed) {
+			return;
+		}
+		try {
+			if (!tickWriter.offer(symbol, timestamp, price)) {
+				droppedTicks.incrementAndGet();
+			}
+		} catch (RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	// Keeps the first failure, unless it only raced with close()
+	synchronized void fail(RuntimeException e) {
+		if (failure == null && !closed) {
+			failure = e;
+		}
+	}
+
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			fillWriter.close();
+		} finally {
+			tickWriter.close();
+		}
+		if (failure != null) {
+			throw new IOException("Could not export a row", failure);
+		}
+		if (droppedFills.get() > 0 || droppedTicks.get() > 0) {
+			throw new IOException("Export fell behind; dropped "
+					+ droppedFills.get() + " fill rows and " + droppedTicks.get()
+					+ " tick rows");
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package pkg.market.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import pkg.exception.StockMarketExpection;
+
+/**
+ * Runs independent replays in parallel, one thread per core. Each stream
+ * gets its own ReplayEngine, so runs share no state and the results are
+ * the same as running them one after another.
+ */
+public class Backtester {
+	int threads;
+
+	public Backtester() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public Backtester(int threads) {
+		this.threads = threads;
+	}
+
+	// Results are returned in the same order as the streams
+	public List<ReplayResult> runAll(final String marketName,
+			final long startTime, List<List<ReplayEvent>> streams)
+			throws StockMarketExpection {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<ReplayResult>> futures = new ArrayList<Future<ReplayResult>>();
+			for (final List<ReplayEvent> events : streams) {
+				futures.add(executor.submit(new Callable<ReplayResult>() {
+					@Override
+					public ReplayResult call() {
+						return new ReplayEngine(marketName, startTime).run(events);
+					}
+				}));
+			}
+
+			List<ReplayResult> results = new ArrayList<ReplayResult>();
+			for (Future<ReplayResult> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StockMarketExpection("Backtest interrupted");
+		} catch (ExecutionException e) {
+			throw new StockMarketExpection("Backtest failed: " + e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
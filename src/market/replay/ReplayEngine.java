@@ -0,0 +1,191 @@
+package pkg.market.replay;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import pkg.exception.StockMarketExpection;
+import pkg.market.Market;
+import pkg.market.PriceTick;
+import pkg.stock.Stock;
+import pkg.trader.Trader;
+import pkg.trader.TraderValuation;
+
+/**
+ * Drives a fresh Market from a recorded event stream. Time comes from a
+ * SimulatedClock set to each event's timestamp and the market is quiet, so
+ * the same stream always yields the same ReplayResult. An engine owns all
+ * of its state and can run alongside other engines on other threads.
+ */
+public class ReplayEngine {
+	Market market;
+	SimulatedClock clock;
+	Map<String, Trader> traders;
+	ReplayResult result;
+
+	public ReplayEngine(String marketName, long startTime) {
+		clock = new SimulatedClock(startTime);
+		market = new Market(marketName);
+		market.setClock(clock);
+		market.setQuiet(true);
+		traders = new TreeMap<String, Trader>();
+		result = new ReplayResult(marketName);
+	}
+
+	public ReplayResult run(List<ReplayEvent> events) {
+		for (ReplayEvent event : events) {
+			clock.advanceTo(event.getTimestamp());
+			try {
+				apply(event);
+				result.eventsApplied++;
+			} catch (StockMarketExpection e) {
+				result.eventsRejected++;
+			}
+		}
+		return finish();
+	}
+
+	void apply(ReplayEvent event) throws StockMarketExpection {
+		validate(event);
+		switch (event.getType()) {
+		case NEW_TRADER:
+			if (traders.containsKey(event.getTraderName())) {
+				throw new StockMarketExpection("Trader already present ("
+						+ event.getTraderName() + ")");
+			}
+			traders.put(event.getTraderName(),
+					new Trader(event.getTraderName(), event.getPrice()));
+			break;
+		case IPO:
+			// Not IPO.enterNewStock, which swallows rejections
+			market.addStock(new Stock(event.getSymbol(), event.getStockName(),
+					event.getPrice()));
+			break;
+		case BUY_FROM_BANK:
+			checkStock(event);
+			getTrader(event).buyFromBank(market, event.getSymbol(),
+					event.getVolume());
+			break;
+		case LIMIT_ORDER:
+			checkStock(event);
+			getTrader(event).placeNewOrder(market, event.getSymbol(),
+					event.getVolume(), event.getPrice(), event.getOrderType());
+			break;
+		case MARKET_ORDER:
+			checkStock(event);
+			getTrader(event).placeNewMarketOrder(market, event.getSymbol(),
+					event.getVolume(), 0, event.getOrderType());
+			break;
+		case CANCEL:
+			getTrader(event).cancelOrder(market, event.getSymbol(),
+					event.getOrderType());
+			break;
+		case TRIGGER_TRADE:
+			market.triggerTrade();
+			break;
+		}
+	}
+
+	// Malformed recorded events are rejected here, so any runtime exception
+	// past this point is a bug in the market and ends the run
+	void validate(ReplayEvent event) throws StockMarketExpection {
+		ReplayEventType type = event.getType();
+		if (type == null) {
+			throw new StockMarketExpection("Replay event has no type ("
+					+ event.getTimestamp() + ")");
+		}
+		switch (type) {
+		case NEW_TRADER:
+			checkTraderName(event);
+			break;
+		case IPO:
+			checkSymbol(event);
+			break;
+		case BUY_FROM_BANK:
+			checkTraderName(event);
+			checkSymbol(event);
+			checkVolume(event);
+			break;
+		case LIMIT_ORDER:
+		case MARKET_ORDER:
+			checkTraderName(event);
+			checkSymbol(event);
+			checkVolume(event);
+			checkOrderType(event);
+			break;
+		case CANCEL:
+			checkTraderName(event);
+			checkSymbol(event);
+			checkOrderType(event);
+			break;
+		case TRIGGER_TRADE:
+			break;
+		}
+	}
+
+	void checkTraderName(ReplayEvent event) throws StockMarketExpection {
+		if (event.getTraderName() == null) {
+			throw new StockMarketExpection("Replay event has no trader ("
+					+ event.getType() + ")");
+		}
+	}
+
+	void checkSymbol(ReplayEvent event) throws StockMarketExpection {
+		if (event.getSymbol() == null) {
+			throw new StockMarketExpection("Replay event has no symbol ("
+					+ event.getType() + ")");
+		}
+	}
+
+	void checkVolume(ReplayEvent event) throws StockMarketExpection {
+		if (event.getVolume() <= 0) {
+			throw new StockMarketExpection("Volume must be positive ("
+					+ event.getSymbol() + ", " + event.getVolume() + ")");
+		}
+	}
+
+	void checkOrderType(ReplayEvent event) throws StockMarketExpection {
+		if (event.getOrderType() == null) {
+			throw new StockMarketExpection("Replay event has no order type ("
+					+ event.getType() + ")");
+		}
+	}
+
+	Trader getTrader(ReplayEvent event) throws StockMarketExpection {
+		Trader trader = traders.get(event.getTraderName());
+		if (trader == null) {
+			throw new StockMarketExpection("Trader not present ("
+					+ event.getTraderName() + ")");
+		}
+		return trader;
+	}
+
+	void checkStock(ReplayEvent event) throws StockMarketExpection {
+		if (market.getStockForSymbol(event.getSymbol()) == null) {
+			throw new StockMarketExpection("Stock not present ("
+					+ event.getSymbol() + ")");
+		}
+	}
+
+	ReplayResult finish() {
+		for (String name : traders.keySet()) {
+			Trader trader = traders.get(name);
+			TraderValuation valuation = market.getPortfolioValuator()
+					.getValuationFor(trader);
+			result.cashByTrader.put(name, trader.getCashInHand());
+			result.realizedPnLByTrader.put(name, valuation.getRealizedPnL());
+			result.unrealizedPnLByTrader.put(name, valuation.getUnrealizedPnL());
+		}
+		for (String symbol : market.getSymbols()) {
+			PriceTick currentPrice = market.getCurrentPrice(symbol);
+			if (currentPrice != null) {
+				result.finalPrices.put(symbol, currentPrice.getPrice());
+			}
+		}
+		return result;
+	}
+
+	public Market getMarket() {
+		return market;
+	}
+}
@@ -0,0 +1,64 @@
+package pkg.market.replay;
+
+import pkg.order.OrderType;
+
+/**
+ * One recorded market event. Fields that do not apply to the event type are
+ * ignored: NEW_TRADER uses traderName and price (starting cash), IPO uses
+ * symbol, stockName and price, TRIGGER_TRADE uses only the timestamp.
+ */
+public class ReplayEvent {
+	long timestamp;
+	ReplayEventType type;
+	String traderName;
+	String symbol;
+	String stockName;
+	int volume;
+	double price;
+	OrderType orderType;
+
+	public ReplayEvent(long timestamp, ReplayEventType type,
+			String traderName, String symbol, String stockName, int volume,
+			double price, OrderType orderType) {
+		this.timestamp = timestamp;
+		this.type = type;
+		this.traderName = traderName;
+		this.symbol = symbol;
+		this.stockName = stockName;
+		this.volume = volume;
+		this.price = price;
+		this.orderType = orderType;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public ReplayEventType getType() {
+		return type;
+	}
+
+	public String getTraderName() {
+		return traderName;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public String getStockName() {
+		return stockName;
+	}
+
+	public int getVolume() {
+		return volume;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public OrderType getOrderType() {
+		return orderType;
+	}
+}
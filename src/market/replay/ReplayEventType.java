@@ -0,0 +1,5 @@
+package pkg.market.replay;
+
+public enum ReplayEventType {
+	NEW_TRADER, IPO, BUY_FROM_BANK, LIMIT_ORDER, MARKET_ORDER, CANCEL, TRIGGER_TRADE
+}
@@ -0,0 +1,64 @@
+package pkg.market.replay;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ReplayResult {
+	String marketName;
+	int eventsApplied;
+	int eventsRejected;
+	// Sorted maps so two runs of the same stream compare and print identically
+	Map<String, Double> finalPrices;
+	Map<String, Double> cashByTrader;
+	Map<String, Double> realizedPnLByTrader;
+	Map<String, Double> unrealizedPnLByTrader;
+
+	public ReplayResult(String marketName) {
+		this.marketName = marketName;
+		finalPrices = new TreeMap<String, Double>();
+		cashByTrader = new TreeMap<String, Double>();
+		realizedPnLByTrader = new TreeMap<String, Double>();
+		unrealizedPnLByTrader = new TreeMap<String, Double>();
+	}
+
+	public int getEventsApplied() {
+		return eventsApplied;
+	}
+
+	public int getEventsRejected() {
+		return eventsRejected;
+	}
+
+	public Map<String, Double> getFinalPrices() {
+		return finalPrices;
+	}
+
+	public Map<String, Double> getCashByTrader() {
+		return cashByTrader;
+	}
+
+	public Map<String, Double> getRealizedPnLByTrader() {
+		return realizedPnLByTrader;
+	}
+
+	public Map<String, Double> getUnrealizedPnLByTrader() {
+		return unrealizedPnLByTrader;
+	}
+
+	public void printResult() {
+		System.out.println("Replay of: " + marketName);
+		System.out.println("=====================");
+		System.out.println("Events applied: " + eventsApplied
+				+ ", rejected: " + eventsRejected);
+		for (String symbol : finalPrices.keySet()) {
+			System.out.print("(" + symbol + ", " + finalPrices.get(symbol) + ") ");
+		}
+		System.out.println();
+		for (String trader : cashByTrader.keySet()) {
+			System.out.println(trader + " Cash: " + cashByTrader.get(trader)
+					+ " Realized P&L: " + realizedPnLByTrader.get(trader)
+					+ " Unrealized P&L: " + unrealizedPnLByTrader.get(trader));
+		}
+		System.out.println("+++++++++++++++++++++");
+	}
+}
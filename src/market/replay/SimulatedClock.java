@@ -0,0 +1,23 @@
+package pkg.market.replay;
+
+import pkg.market.api.IClock;
+
+public class SimulatedClock implements IClock {
+	long now;
+
+	public SimulatedClock(long startTime) {
+		this.now = startTime;
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return now;
+	}
+
+	public void advanceTo(long time) {
+		// Simulated time only moves forward
+		if (time > now) {
+			now = time;
+		}
+	}
+}
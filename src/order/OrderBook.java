@@ -8,22 +8,26 @@ package pkg.order;
  */
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import pkg.exception.StockMarketExpection;
 import pkg.market.Market;
+import pkg.market.PriceTick;
+import pkg.market.SymbolPartition;
 import pkg.market.api.PriceSetter;
 
 public class OrderBook {
 	Market market;
-	HashMap<String, ArrayList<Order>> buyOrders;
-	HashMap<String, ArrayList<Order>> sellOrders;
+	// A symbol's order lists are only touched while holding its market partition
+	ConcurrentHashMap<String, ArrayList<Order>> buyOrders;
+	ConcurrentHashMap<String, ArrayList<Order>> sellOrders;
 
 	public OrderBook(Market market) {
 		this.market = market;
-		buyOrders = new HashMap<String, ArrayList<Order>>();
-		sellOrders = new HashMap<String, ArrayList<Order>>();
+		buyOrders = new ConcurrentHashMap<String, ArrayList<Order>>();
+		sellOrders = new ConcurrentHashMap<String, ArrayList<Order>>();
 	}
 
 	public void addToOrderBook(Order order) {
@@ -34,112 +38,153 @@ public class OrderBook {
 		}	
 	}
   
-	public void addToOrders(HashMap<String, ArrayList<Order>> orders, Order order) {
-        	ArrayList<Order> stockOrders;
-    
-		if (orders.containsKey(order.getStockSymbol())) {
-			stockOrders = orders.get(order.getStockSymbol());
+	public void removeFromOrderBook(Order order) {
+		Map<String, ArrayList<Order>> orders;
+		if (order instanceof BuyOrder) {
+			orders = buyOrders;
 		} else {
-			stockOrders = new ArrayList<Order>();
+			orders = sellOrders;
+		}
+		SymbolPartition partition = market.getPartition(order.getStockSymbol());
+		if (partition == null) {
+			return;
+		}
+		partition.lock();
+		try {
+			if (orders.containsKey(order.getStockSymbol())) {
+				orders.get(order.getStockSymbol()).remove(order);
+			}
+		} finally {
+			partition.unlock();
+		}
+	}
+
+	public void addToOrders(Map<String, ArrayList<Order>> orders, Order order) {
+        	ArrayList<Order> stockOrders;
+		SymbolPartition partition = market.partitionFor(order.getStockSymbol());
+		partition.lock();
+		try {
+			if (orders.containsKey(order.getStockSymbol())) {
+				stockOrders = orders.get(order.getStockSymbol());
+			} else {
+				stockOrders = new ArrayList<Order>();
+			}
+
+			stockOrders.add(order);
+			orders.put(order.getStockSymbol(), stockOrders);
+		} finally {
+			partition.unlock();
 		}
-			
-		stockOrders.add(order);
-		orders.put(order.getStockSymbol(), stockOrders);
         }
 
 	public void trade() {
 		for (String stock : sellOrders.keySet()) {
 			if (buyOrders.containsKey(stock)) {
-				ArrayList<Order> buying = buyOrders.get(stock);
-				ArrayList<Order> selling = sellOrders.get(stock);
-				
-				TreeMap<Double, ArrayList<Order>> sortedOrders = createSortedOrders(buying, selling);
-				
-				// Handle and remove market orders
-				ArrayList<Order> marketOrders = new ArrayList<Order>();
-				int runningBuyTotal = 0, runningSellTotal = 0;
-				double marketPrice = market.getStockForSymbol(stock).getPrice();
-				if (sortedOrders.containsKey(0.0)) {
-					marketOrders = sortedOrders.remove(0.0);
-					
-					for (Order marketOrder : marketOrders) {
-						if (marketOrder instanceof BuyOrder) {
-							runningBuyTotal += marketOrder.getSize();
-						} else {
-							runningSellTotal += marketOrder.getSize();
-						}
-					}
+				// Resting orders created the partition in addToOrders
+				SymbolPartition partition = market.getPartition(stock);
+				partition.lock();
+				try {
+					tradeStock(stock);
+				} finally {
+					partition.unlock();
 				}
-				
-				
-				// Construct cumulative least favorably price list at each price
-				int numPrices = sortedOrders.size();
-				int[] cumulativeBuysPerPrice = new int[numPrices];
-				int[] cumulativeSellsPerPrice = new int[numPrices];
-				
+			}
+		}
+	}
 
-				int i = 0;
-				for (double price : sortedOrders.keySet()) {
-					ArrayList<Order> ordersAtPrice = sortedOrders.get(price);
+	void tradeStock(String stock) {
+		PriceTick currentPrice = market.getCurrentPrice(stock);
+		if (currentPrice == null) {
+			// Not listed, so there is no price to auction around
+			return;
+		}
+		ArrayList<Order> buying = buyOrders.get(stock);
+		ArrayList<Order> selling = sellOrders.get(stock);
+		
+		TreeMap<Double, ArrayList<Order>> sortedOrders = createSortedOrders(buying, selling);
+		
+		// Handle and remove market orders
+		ArrayList<Order> marketOrders = new ArrayList<Order>();
+		int runningBuyTotal = 0, runningSellTotal = 0;
+		double marketPrice = currentPrice.getPrice();
+		if (sortedOrders.containsKey(0.0)) {
+			marketOrders = sortedOrders.remove(0.0);
+			
+			for (Order marketOrder : marketOrders) {
+				if (marketOrder instanceof BuyOrder) {
+					runningBuyTotal += marketOrder.getSize();
+				} else {
+					runningSellTotal += marketOrder.getSize();
+				}
+			}
+		}
+		
+		
+		// Construct cumulative least favorably price list at each price
+		int numPrices = sortedOrders.size();
+		int[] cumulativeBuysPerPrice = new int[numPrices];
+		int[] cumulativeSellsPerPrice = new int[numPrices];
+		
 
-					for (Order o : ordersAtPrice) {
-						if (o instanceof SellOrder) {
-							runningSellTotal += o.getSize();
-						}
-					}
-					
-					cumulativeSellsPerPrice[i] = runningSellTotal;
-					i++;
+		int i = 0;
+		for (double price : sortedOrders.keySet()) {
+			ArrayList<Order> ordersAtPrice = sortedOrders.get(price);
+
+			for (Order o : ordersAtPrice) {
+				if (o instanceof SellOrder) {
+					runningSellTotal += o.getSize();
 				}
+			}
+			
+			cumulativeSellsPerPrice[i] = runningSellTotal;
+			i++;
+		}
                           
-				int j = numPrices - 1;
-				for (double price : sortedOrders.descendingKeySet()) {
-					ArrayList<Order> ordersAtPrice = sortedOrders.get(price);
-
-					for (Order o : ordersAtPrice) {
-						if (o instanceof BuyOrder) {
-							runningBuyTotal += o.getSize();
-						}
-					}
-					
-					cumulativeBuysPerPrice[j] = runningBuyTotal;
-					j--;
-				}
-				
-				// Find the matching price
-				int delta = Integer.MAX_VALUE;
-				int k = 0, matchingIndex = -1;
-				double matchingPrice = marketPrice;
-				
-				while (delta > 0 && k < numPrices) {
-					int newDelta = cumulativeBuysPerPrice[k] - cumulativeSellsPerPrice[k];
-					if (newDelta < delta) {
-						delta = newDelta;
-						if (newDelta >= 0) {
-							matchingIndex = k;
-						}
-					}
-					k++;
-				}
-				for (double price : sortedOrders.keySet()) {
-					if (matchingIndex == 0) {
-						matchingPrice = price;
-						break;
-					}
-					matchingIndex--;
+		int j = numPrices - 1;
+		for (double price : sortedOrders.descendingKeySet()) {
+			ArrayList<Order> ordersAtPrice = sortedOrders.get(price);
+
+			for (Order o : ordersAtPrice) {
+				if (o instanceof BuyOrder) {
+					runningBuyTotal += o.getSize();
 				}
+			}
 			
-				// Update the stocks price in the market using the PriceSetter.
-				PriceSetter priceSetter = new PriceSetter();
-				priceSetter.registerObserver(market.getMarketHistory());
-				market.getMarketHistory().setSubject(priceSetter);
-				if (matchingPrice != marketPrice) {
-					priceSetter.setNewPrice(market, stock, matchingPrice);
+			cumulativeBuysPerPrice[j] = runningBuyTotal;
+			j--;
+		}
+		
+		// Find the matching price
+		int delta = Integer.MAX_VALUE;
+		int k = 0, matchingIndex = -1;
+		double matchingPrice = marketPrice;
+		
+		while (delta > 0 && k < numPrices) {
+			int newDelta = cumulativeBuysPerPrice[k] - cumulativeSellsPerPrice[k];
+			if (newDelta < delta) {
+				delta = newDelta;
+				if (newDelta >= 0) {
+					matchingIndex = k;
 				}
-				
-				removeDelegateOrders(stock, sortedOrders, marketOrders, matchingPrice);
 			}
+			k++;
+		}
+		for (double price : sortedOrders.keySet()) {
+			if (matchingIndex == 0) {
+				matchingPrice = price;
+				break;
+			}
+			matchingIndex--;
 		}
+	
+		// Update the stocks price in the market using the PriceSetter.
+		// The market records the history and reprices holdings itself.
+		PriceSetter priceSetter = new PriceSetter();
+		if (matchingPrice != marketPrice) {
+			priceSetter.setNewPrice(market, stock, matchingPrice);
+		}
+		
+		removeDelegateOrders(stock, sortedOrders, marketOrders, matchingPrice);
 	}
   
 	TreeMap<Double, ArrayList<Order>> createSortedOrders(ArrayList<Order> buying, ArrayList<Order> selling) {
@@ -169,7 +214,7 @@ public class OrderBook {
         	return sortedOrders;
         }
   
-	void removeDelegateOrders(Stock stock, TreeMap<Double, ArrayList<Order>> sortedOrders, ArrayList<Order> marketOrders, double matchingPrice) {
+	void removeDelegateOrders(String stock, TreeMap<Double, ArrayList<Order>> sortedOrders, ArrayList<Order> marketOrders, double matchingPrice) {
         	for (Order marketOrder : marketOrders) {
 			if (marketOrder instanceof BuyOrder) {
 				buyOrders.get(stock).remove(marketOrder);
@@ -177,11 +222,7 @@ public class OrderBook {
 				sellOrders.get(stock).remove(marketOrder);
 			}
 					
-			try {
-				marketOrder.getTrader().tradePerformed(marketOrder, matchingPrice);
-			} catch (StockMarketExpection e) {
-					e.printStackTrace();
-			}
+			settleOrder(marketOrder, matchingPrice);
 		}
 				
 		for (double price : sortedOrders.keySet()) {
@@ -191,23 +232,26 @@ public class OrderBook {
 				if (o instanceof BuyOrder && price >= matchingPrice) {
 					buyOrders.get(stock).remove(o);
 							
-					try {
-						o.getTrader().tradePerformed(o, matchingPrice);
-					} catch (StockMarketExpection e) {
-						e.printStackTrace();
-					}
+					settleOrder(o, matchingPrice);
 				} else if (o instanceof SellOrder && price <= matchingPrice) {
 					sellOrders.get(stock).remove(o);
 							
-					try {
-						o.getTrader().tradePerformed(o, matchingPrice);
-					} catch (StockMarketExpection e) {
-						e.printStackTrace();
-					}
+					settleOrder(o, matchingPrice);
 				}
 			}
 		}
         
         }
 
+	void settleOrder(Order order, double matchingPrice) {
+		try {
+			order.getTrader().tradePerformed(order, matchingPrice);
+			market.recordFill(order, matchingPrice);
+		} catch (StockMarketExpection e) {
+			if (!market.isQuiet()) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 }
@@ -0,0 +1,27 @@
+package pkg.trader;
+
+class Holding {
+	int quantity;
+	double averageCost;
+	double markPrice;
+
+	Holding(double markPrice) {
+		this.quantity = 0;
+		this.averageCost = 0.0;
+		this.markPrice = markPrice;
+	}
+
+	Holding(Holding other) {
+		this.quantity = other.quantity;
+		this.averageCost = other.averageCost;
+		this.markPrice = other.markPrice;
+	}
+
+	double unrealizedPnL() {
+		return quantity * (markPrice - averageCost);
+	}
+
+	double exposure() {
+		return quantity * markPrice;
+	}
+}
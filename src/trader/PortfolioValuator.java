@@ -0,0 +1,77 @@
+package pkg.trader;
+
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pkg.market.Market;
+import pkg.market.PriceTick;
+import pkg.order.BuyOrder;
+import pkg.order.Order;
+
+/**
+ * Keeps every trader's P&L marked to the latest market price. Fills and
+ * price updates only touch the symbol involved, and a price update only
+ * visits the traders that hold that symbol.
+ *
+ * State is sharded by symbol, each shard with its own lock, so auctions
+ * on different symbols never wait on each other here. Readers get an
+ * immutable TraderValuation; it is consistent per symbol, though a
+ * concurrent auction on another symbol may land either side of it.
+ */
+public class PortfolioValuator {
+	Market market;
+	ConcurrentHashMap<String, SymbolValuation> symbols;
+
+	public PortfolioValuator(Market market) {
+		super();
+		this.market = market;
+		symbols = new ConcurrentHashMap<String, SymbolValuation>();
+	}
+
+	SymbolValuation valuationFor(String symbol) {
+		SymbolValuation valuation = symbols.get(symbol);
+		if (valuation == null) {
+			SymbolValuation created = new SymbolValuation(symbol);
+			valuation = symbols.putIfAbsent(symbol, created);
+			if (valuation == null) {
+				valuation = created;
+			}
+		}
+		return valuation;
+	}
+
+	public void reprice(String symbol, double newPrice) {
+		// Kept even without holders, so the first fill is marked correctly
+		valuationFor(symbol).reprice(newPrice);
+	}
+
+	public void recordFill(Order order, double fillPrice) {
+		String symbol = order.getStockSymbol();
+		SymbolValuation valuation = valuationFor(symbol);
+
+		if (order instanceof BuyOrder) {
+			double fallbackMark = fillPrice;
+			PriceTick currentPrice = market.getCurrentPrice(symbol);
+			if (currentPrice != null) {
+				fallbackMark = currentPrice.getPrice();
+			}
+			valuation.buy(order.getTrader(), order.getSize(), fillPrice,
+					fallbackMark);
+		} else {
+			valuation.sell(order.getTrader(), order.getSize(), fillPrice);
+		}
+	}
+
+	public TraderValuation getValuationFor(Trader trader) {
+		TreeMap<String, Holding> holdings = new TreeMap<String, Holding>();
+		double realizedPnL = 0.0;
+		for (SymbolValuation valuation : symbols.values()) {
+			realizedPnL += valuation.addTo(trader, holdings);
+		}
+		return new TraderValuation(trader, holdings, realizedPnL);
+	}
+
+	public void printValuationFor(Trader trader) {
+		getValuationFor(trader).printValuation();
+	}
+}
@@ -0,0 +1,75 @@
+package pkg.trader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One symbol's share of the portfolio valuations: who holds it, at what
+ * cost, and the P&L realized by selling it. Each symbol has its own
+ * monitor, so fills and price updates on different symbols never contend.
+ * Nothing else is locked while holding it.
+ */
+class SymbolValuation {
+	String symbol;
+	// Only traders currently holding the symbol, so a price update visits
+	// just those
+	Map<Trader, Holding> holdings;
+	Map<Trader, Double> realizedPnL;
+	// Latest price seen for the symbol, or NaN before the first one
+	double markPrice;
+
+	SymbolValuation(String symbol) {
+		this.symbol = symbol;
+		this.holdings = new HashMap<Trader, Holding>();
+		this.realizedPnL = new HashMap<Trader, Double>();
+		this.markPrice = Double.NaN;
+	}
+
+	synchronized void buy(Trader trader, int volume, double fillPrice,
+			double fallbackMark) {
+		Holding holding = holdings.get(trader);
+		if (holding == null) {
+			holding = new Holding(currentMark(fallbackMark));
+			holdings.put(trader, holding);
+		}
+		holding.averageCost = (holding.quantity * holding.averageCost + volume
+				* fillPrice) / (holding.quantity + volume);
+		holding.quantity += volume;
+	}
+
+	synchronized void sell(Trader trader, int volume, double fillPrice) {
+		Holding holding = holdings.get(trader);
+		if (holding == null) {
+			return;
+		}
+		int sold = Math.min(volume, holding.quantity);
+		Double realized = realizedPnL.get(trader);
+		realizedPnL.put(trader, (realized == null ? 0.0 : realized)
+				+ sold * (fillPrice - holding.averageCost));
+		holding.quantity -= sold;
+		if (holding.quantity == 0) {
+			holdings.remove(trader);
+		}
+	}
+
+	synchronized void reprice(double newPrice) {
+		markPrice = newPrice;
+		for (Holding holding : holdings.values()) {
+			holding.markPrice = newPrice;
+		}
+	}
+
+	double currentMark(double fallbackMark) {
+		return Double.isNaN(markPrice) ? fallbackMark : markPrice;
+	}
+
+	// Copies the trader's part of this symbol into a snapshot being built
+	synchronized double addTo(Trader trader, Map<String, Holding> snapshot) {
+		Holding holding = holdings.get(trader);
+		if (holding != null) {
+			snapshot.put(symbol, new Holding(holding));
+		}
+		Double realized = realizedPnL.get(trader);
+		return realized == null ? 0.0 : realized;
+	}
+}
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 
 import pkg.exception.StockMarketExpection;
 import pkg.market.Market;
+import pkg.market.PriceTick;
 import pkg.order.BuyOrder;
 import pkg.order.Order;
 import pkg.order.OrderType;
@@ -33,19 +34,23 @@ public class Trader {
 
 	public void buyFromBank(Market market, String symbol, int volume)
 			throws StockMarketExpection {
-		double orderPrice = market.getStockForSymbol(symbol).getPrice();
-		
-		if (orderPrice * volume > cashInHand) {
-			throw new StockMarketExpection("Cannot place buy order for stock: " + symbol 
-					+ " since there is not enough money. Trader: " + this.name);
+		double orderPrice = currentPriceOf(market, symbol);
+		BuyOrder theOrder;
+
+		synchronized (this) {
+			if (orderPrice * volume > cashInHand) {
+				throw new StockMarketExpection("Cannot place buy order for stock: " + symbol 
+						+ " since there is not enough money. Trader: " + this.name);
+			}
+
+			// Create the order
+			theOrder = new BuyOrder(symbol, volume, orderPrice, this);
+
+			// Add the order to the trader's position and update cashInHand
+			position.add(theOrder);
+			this.cashInHand -= orderPrice * volume;
 		}
-		
-		// Create the order
-		BuyOrder theOrder = new BuyOrder(symbol, volume, orderPrice, this);
-		
-		// Add the order to the trader's position and update cashInHand
-		position.add(theOrder);
-		this.cashInHand -= orderPrice * volume;
+		market.recordFill(theOrder, orderPrice);
 	}
 
 	public void placeNewOrder(Market market, String symbol, int volume,
@@ -53,11 +58,6 @@ public class Trader {
 		// Get total stock price
 		double totalPrice = price * volume;
 		
-		if (orderType == OrderType.BUY && totalPrice > cashInHand) {
-			throw new StockMarketExpection("Cannot place buy order for stock: " + symbol 
-					+ " since there is not enough money. Trader: " + this.name);
-		}
-		
 		Order theOrder;
 		if (orderType == OrderType.BUY) {
 			theOrder = new BuyOrder(symbol, volume, price, this);
@@ -65,41 +65,15 @@ public class Trader {
 			theOrder = new SellOrder(symbol, volume, price, this);
 		}
 		
-		// Check if there is an outstanding order for stock
-		if (OrderUtility.isAlreadyPresent(ordersPlaced, theOrder)) {
-			throw new StockMarketExpection("Cannot place order for stock: " + symbol 
-					+ " since there already one in place. Trader: " + this.name);
-		}
-		
-		// Check if trader owns the stock if selling 
-		if (orderType == OrderType.SELL 
-				&& !OrderUtility.owns(position, symbol)) {
-			throw new StockMarketExpection("Cannot place sell order for stock: " + symbol 
-					+ " since no stock is currently owned. Trader: " + this.name);
-		}
-		
-		// Check if trader owns enough of the stock if selling
-		if (orderType == OrderType.SELL 
-				&& volume > OrderUtility.ownedQuantity(position, symbol)) {
-			throw new StockMarketExpection("Cannot place sell order for stock: " + symbol 
-					+ " since not enough stock is currently owned. Trader: " + this.name);
-		}
-		
+		addToOrdersPlaced(theOrder, orderType, totalPrice);
 		market.addOrder(theOrder);
-		this.ordersPlaced.add(theOrder);
 	}
 
 	public void placeNewMarketOrder(Market market, String symbol, int volume,
 			double price, OrderType orderType) throws StockMarketExpection {
 		// Similar to the other method, except the order is a market order
 		
-		double totalPrice = market.getStockForSymbol(symbol).getPrice() * volume;
-		
-		// Check if stock is more than cashInHand
-		if (orderType == OrderType.BUY && totalPrice > cashInHand) {
-			throw new StockMarketExpection("Cannot place buy order for stock: " + symbol 
-					+ " since there is not enough money. Trader: " + this.name);
-		}
+		double totalPrice = currentPriceOf(market, symbol) * volume;
 		
 		Order theOrder;
 		if (orderType == OrderType.BUY) {
@@ -108,6 +82,26 @@ public class Trader {
 			theOrder = new SellOrder(symbol, volume, true, this);
 		}
 		
+		addToOrdersPlaced(theOrder, orderType, totalPrice);
+		market.addOrder(theOrder);
+	}
+
+	/*
+	 * A trader's state is only touched while holding its monitor. Calls into
+	 * the market are made outside it: auctions lock the symbol's partition
+	 * and then the trader, so the trader must never wait on a partition.
+	 */
+	synchronized void addToOrdersPlaced(Order theOrder, OrderType orderType,
+			double totalPrice) throws StockMarketExpection {
+		String symbol = theOrder.getStockSymbol();
+		int volume = theOrder.getSize();
+
+		// Check if stock is more than cashInHand
+		if (orderType == OrderType.BUY && totalPrice > cashInHand) {
+			throw new StockMarketExpection("Cannot place buy order for stock: " + symbol 
+					+ " since there is not enough money. Trader: " + this.name);
+		}
+		
 		// Check if there is an outstanding order for stock
 		if (OrderUtility.isAlreadyPresent(ordersPlaced, theOrder)) {
 			throw new StockMarketExpection("Cannot place order for stock: " + symbol 
@@ -128,11 +122,47 @@ public class Trader {
 					+ " since not enough stock is currently owned. Trader: " + this.name);
 		}
 		
-		market.addOrder(theOrder);
+		// Recorded before it reaches the book, so a fill always finds it
 		this.ordersPlaced.add(theOrder);
 	}
 
-	public void tradePerformed(Order order, double matchPrice)
+	public void cancelOrder(Market market, String symbol, OrderType orderType)
+			throws StockMarketExpection {
+		Order toCancel = null;
+		synchronized (this) {
+			for (Order order : ordersPlaced) {
+				if (order.getStockSymbol().equals(symbol)
+						&& (orderType == OrderType.BUY) == (order instanceof BuyOrder)) {
+					toCancel = order;
+					break;
+				}
+			}
+		}
+		if (toCancel == null) {
+			throw new StockMarketExpection("Cannot cancel order for stock: " + symbol
+					+ " since there is none in place. Trader: " + this.name);
+		}
+
+		market.cancelOrder(toCancel);
+		synchronized (this) {
+			// An auction may have filled it before it left the book
+			if (!this.ordersPlaced.remove(toCancel)) {
+				throw new StockMarketExpection("Cannot cancel order for stock: " + symbol
+						+ " since it has already been filled. Trader: " + this.name);
+			}
+		}
+	}
+
+	double currentPriceOf(Market market, String symbol)
+			throws StockMarketExpection {
+		PriceTick currentPrice = market.getCurrentPrice(symbol);
+		if (currentPrice == null) {
+			throw new StockMarketExpection("Stock not present (" + symbol + ")");
+		}
+		return currentPrice.getPrice();
+	}
+
+	public synchronized void tradePerformed(Order order, double matchPrice)
 			throws StockMarketExpection {
 		// Update the trader's orderPlaced, position, and cashInHand members
 		// based on the notification.
@@ -153,7 +183,15 @@ public class Trader {
 		this.ordersPlaced.remove(order);
 	}
 
-	public void printTrader() {
+	public String getName() {
+		return name;
+	}
+
+	public synchronized double getCashInHand() {
+		return cashInHand;
+	}
+
+	public synchronized void printTrader() {
 		System.out.println("Trader Name: " + name);
 		System.out.println("=====================");
 		System.out.println("Cash: " + cashInHand);
@@ -0,0 +1,64 @@
+package pkg.trader;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A read-only snapshot of one trader's P&L, taken by
+ * PortfolioValuator.getValuationFor. It does not change as the market
+ * moves; ask the valuator again for a newer one.
+ */
+public class TraderValuation {
+	private final Trader trader;
+	private final Map<String, Holding> holdings;
+	private final double realizedPnL;
+	private final double unrealizedPnL;
+	private final double exposure;
+
+	// Takes ownership of holdings, which must be copies
+	TraderValuation(Trader trader, TreeMap<String, Holding> holdings,
+			double realizedPnL) {
+		this.trader = trader;
+		this.holdings = holdings;
+		this.realizedPnL = realizedPnL;
+		double unrealized = 0.0;
+		double held = 0.0;
+		for (Holding holding : holdings.values()) {
+			unrealized += holding.unrealizedPnL();
+			held += holding.exposure();
+		}
+		this.unrealizedPnL = unrealized;
+		this.exposure = held;
+	}
+
+	public int getQuantity(String symbol) {
+		Holding holding = holdings.get(symbol);
+		return holding == null ? 0 : holding.quantity;
+	}
+
+	public double getRealizedPnL() {
+		return realizedPnL;
+	}
+
+	public double getUnrealizedPnL() {
+		return unrealizedPnL;
+	}
+
+	public double getExposure() {
+		return exposure;
+	}
+
+	public void printValuation() {
+		System.out.println("Trader Name: " + trader.getName());
+		System.out.println("=====================");
+		System.out.println("Realized P&L: " + realizedPnL);
+		System.out.println("Unrealized P&L: " + unrealizedPnL);
+		System.out.println("Exposure: " + exposure);
+		for (String symbol : holdings.keySet()) {
+			Holding holding = holdings.get(symbol);
+			System.out.println("(" + symbol + ", " + holding.quantity + " @ "
+					+ holding.averageCost + ", mark " + holding.markPrice + ")");
+		}
+		System.out.println("+++++++++++++++++++++");
+	}
+}